@@ -28,7 +28,7 @@ import com.smanzana.Project3.Utils.CircularList;
  */
 public class Bridge {
 	
-	private static class EmbeddedBridge {
+	static class EmbeddedBridge {
 		
 		/**
 		 * Keeps track of which socket is used to received data from the embedded bridge node
@@ -40,11 +40,26 @@ public class Bridge {
 		 */
 		private Socket outputSocket;
 		
+		/**
+		 * Link used instead of the output socket when this bridge is attached to a simulated ring.
+		 * Null for real, socket-backed embedded bridges.
+		 */
+		private VirtualLink virtualLink;
+		
 		public EmbeddedBridge(Socket in, Socket out) {
 			this.inputSocket = in;
 			this.outputSocket = out;
 		}
 		
+		/**
+		 * Creates an embedded bridge for a simulated ring. It has no sockets, so it must only ever be put in
+		 * knownConnections and never in embeddedBridges, which {@link Bridge#nextInput() nextInput()} polls.
+		 * @param link Where frames sent to this bridge are delivered
+		 */
+		public EmbeddedBridge(VirtualLink link) {
+			this.virtualLink = link;
+		}
+		
 //		public boolean contains(Socket sock) {
 //			SocketAddress addr = sock.getRemoteSocketAddress();
 //			if (addr.equals(inputSocket.getRemoteSocketAddress()) || addr.equals(outputSocket.getRemoteSocketAddress())) {
@@ -55,6 +70,9 @@ public class Bridge {
 		
 		@Override
 		public String toString() {
+			if (virtualLink != null) {
+				return "Virtual: " + virtualLink.toString() + "\n";
+			}
 			return "Input: " + inputSocket.toString() + "\nOutput: " + outputSocket.toString() + "\n";
 		}
 	}
@@ -195,6 +213,37 @@ public class Bridge {
 		knownConnections = new LinkedList<EmbeddedBridge>();
 	}
 	
+	/**
+	 * Registers a simulated ring with this bridge. Frames routed to the returned EmbeddedBridge are handed
+	 * to the passed link instead of being written to a socket.<br />
+	 * The ring is only added to the known connections so it gets flooded to. It is not polled for input, so
+	 * {@link #start()} still only reads from socket-backed bridges.<br />
+	 * Used by {@link Simulation} to drive {@link #processFrame(EmbeddedBridge, byte[]) processFrame()} without sockets.
+	 * @param link The link frames leaving the bridge towards the ring should be delivered to
+	 * @return the EmbeddedBridge to pass as the return bridge for frames coming from that ring
+	 */
+	EmbeddedBridge attach(VirtualLink link) {
+		EmbeddedBridge br = new EmbeddedBridge(link);
+		knownConnections.add(br);
+		return br;
+	}
+	
+	/**
+	 * Checks whether the routing table already knows which LAN the passed address lives on.
+	 * @param address The station address to look up
+	 * @return true if a frame to that address would be sent to a single LAN instead of flooded
+	 */
+	boolean knows(byte address) {
+		return lookupTable.containsKey(address);
+	}
+	
+	/**
+	 * @return how many addresses are currently in the routing table
+	 */
+	int tableSize() {
+		return lookupTable.size();
+	}
+	
 	public void start() {
 		boolean cont = true;
 		while (cont) {
@@ -354,7 +403,7 @@ public class Bridge {
 	}
 	
 	
-	private boolean processFrame(EmbeddedBridge returnBridge, byte[] frame) throws IOException {
+	boolean processFrame(EmbeddedBridge returnBridge, byte[] frame) throws IOException {
 		if (frame == null) {
 			System.out.println("Tried to process a null frame in the bridge!");
 			return false;
@@ -560,6 +609,11 @@ public class Bridge {
 			return;
 		}
 		
+		if (output.virtualLink != null) {
+			output.virtualLink.deliver(frame);
+			return;
+		}
+		
 		OutputStream out = output.outputSocket.getOutputStream();
 		out.write(frame);
 		out.flush();
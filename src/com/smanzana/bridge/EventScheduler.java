@@ -0,0 +1,95 @@
+package com.smanzana.bridge;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * Discrete-event scheduler running on simulated time.<br />
+ * Events are fired in order of their time. Events scheduled for the same time are fired in the order they were
+ * scheduled, so a run is completely reproducible.
+ * <p>Time is kept in microseconds and only advances when an event is fired. Nothing ever sleeps.</p>
+ */
+class EventScheduler {
+	
+	private static class Event {
+		
+		private long time;
+		
+		/**
+		 * Order the event was scheduled in. Breaks ties between events with the same time.
+		 */
+		private long sequence;
+		
+		private Runnable action;
+		
+		public Event(long time, long sequence, Runnable action) {
+			this.time = time;
+			this.sequence = sequence;
+			this.action = action;
+		}
+	}
+	
+	private PriorityQueue<Event> queue;
+	
+	/**
+	 * Current simulated time, in microseconds
+	 */
+	private long now;
+	
+	private long nextSequence;
+	
+	private long fired;
+	
+	public EventScheduler() {
+		queue = new PriorityQueue<Event>(1024, new Comparator<Event>() {
+			@Override
+			public int compare(Event a, Event b) {
+				if (a.time != b.time) {
+					return a.time < b.time ? -1 : 1;
+				}
+				return a.sequence < b.sequence ? -1 : (a.sequence == b.sequence ? 0 : 1);
+			}
+		});
+		now = 0;
+		nextSequence = 0;
+		fired = 0;
+	}
+	
+	/**
+	 * Schedules the passed action to run <i>delay</i> microseconds from now.
+	 * @param delay How long from the current simulated time to wait. Negative delays are treated as 0.
+	 * @param action What to run
+	 */
+	public void schedule(long delay, Runnable action) {
+		if (delay < 0) {
+			delay = 0;
+		}
+		queue.add(new Event(now + delay, nextSequence++, action));
+	}
+	
+	/**
+	 * Fires events until none are left.
+	 */
+	public void run() {
+		Event event;
+		while ((event = queue.poll()) != null) {
+			now = event.time;
+			fired++;
+			event.action.run();
+		}
+	}
+	
+	/**
+	 * @return the current simulated time, in microseconds
+	 */
+	public long now() {
+		return now;
+	}
+	
+	/**
+	 * @return how many events have been fired so far
+	 */
+	public long getFiredCount() {
+		return fired;
+	}
+}
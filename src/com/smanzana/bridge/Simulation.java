@@ -0,0 +1,687 @@
+package com.smanzana.bridge;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+
+import com.smanzana.Project3.Frame.Frame;
+
+/**
+ * In-process simulation of a bridge connected to many rings.<br />
+ * The real {@link Bridge#processFrame(Bridge.EmbeddedBridge, byte[]) routing logic} is run against virtual rings
+ * and virtual links instead of sockets. Everything is driven by an {@link EventScheduler} on simulated time, and all
+ * randomness comes from a single seeded {@link java.util.Random Random}, so the same configuration always gives the
+ * same results.
+ * <p>Addresses are a single byte and 0 is reserved for the bridge, so at most 255 stations can exist. When there are
+ * more rings than stations, the stations are spread evenly and the remaining rings only ever see flooded frames.</p>
+ * <p><b>[Dependencies: Project3]</b></p>
+ */
+public class Simulation {
+
+	/**
+	 * Most stations that can be given a unique, non-zero address
+	 */
+	public static final int MAX_STATIONS = 255;
+
+	/**
+	 * How many bytes of data each generated frame carries. The first 4 hold the frame's id.
+	 */
+	private static final int PAYLOAD_SIZE = 16;
+
+	/**
+	 * Token bit of the AC byte. AC is laid out PPPTMRRR as in 802.5, where T = 0 marks a token and T = 1 a frame.
+	 * The M bit (8) is the monitor bit the bridge clears in {@link Bridge#processFrame(Bridge.EmbeddedBridge, byte[])
+	 * processFrame()}.
+	 */
+	private static final byte AC_FRAME = 0x10;
+
+	/**
+	 * Settings for a single simulation run. All times are in microseconds.
+	 */
+	public static class Config {
+
+		public int rings = 16;
+
+		/**
+		 * Total number of stations, spread evenly over the rings. More than {@link Simulation#MAX_STATIONS} is rejected.
+		 */
+		public int stations = MAX_STATIONS;
+
+		/**
+		 * How many data frames the stations generate in total
+		 */
+		public int frames = 10000;
+
+		/**
+		 * Mean time between two generated frames across the whole network
+		 */
+		public long frameInterval = 100;
+
+		/**
+		 * Time for a frame to travel between the bridge and a ring, in either direction
+		 */
+		public long linkLatency = 50;
+
+		/**
+		 * Time for a frame to travel around a ring, from a station to the embedded bridge node
+		 */
+		public long ringLatency = 200;
+
+		/**
+		 * Time the bridge spends looking at one frame before it starts sending. The bridge handles one frame at a time.
+		 */
+		public long serviceTime = 5;
+
+		/**
+		 * Time the bridge spends writing each copy of a frame, so a flood to every ring costs one of these per ring
+		 */
+		public long sendTime = 1;
+
+		/**
+		 * Time a link is busy putting one frame on the wire. Each link sends one frame at a time in each direction,
+		 * and frames queue up behind each other.
+		 */
+		public long transmitTime = 2;
+
+		/**
+		 * Chance (0 to 1) that a frame is lost each time it crosses a link
+		 */
+		public double loss = 0;
+
+		public long seed = 1;
+
+		@Override
+		public String toString() {
+			return "rings=" + rings + " stations=" + stations + " frames=" + frames + " interval=" + frameInterval
+					+ "us link=" + linkLatency + "us ring=" + ringLatency + "us service=" + serviceTime
+					+ "us send=" + sendTime + "us transmit=" + transmitTime + "us loss=" + loss + " seed=" + seed;
+		}
+	}
+
+	/**
+	 * Results of a simulation run.
+	 */
+	public static class Report {
+
+		public int framesGenerated;
+
+		public int framesDelivered;
+
+		/**
+		 * Frames whose sender saw them acknowledged, either by the bridge's fake ACK or, for traffic within one ring,
+		 * by the accepted frame coming back round to it. Each frame is counted once.
+		 */
+		public int framesAcked;
+
+		public int framesLost;
+
+		/**
+		 * Data frames (FS of 0) the bridge routed
+		 */
+		public int framesRouted;
+
+		/**
+		 * Data frames the bridge had to flood because the destination wasn't in its table yet
+		 */
+		public int framesFlooded;
+
+		public long totalDeliveryTime;
+
+		/**
+		 * Copies of frames the bridge sent to rings, counting every copy of a flood
+		 */
+		public long copiesSent;
+
+		/**
+		 * Simulated time the bridge spent processing and sending frames
+		 */
+		public long bridgeBusyTime;
+
+		/**
+		 * Simulated time at which every station was in the routing table, or -1 if that never happened
+		 */
+		public long convergenceTime = -1;
+
+		/**
+		 * How many stations the routing table knew about at the end of the run
+		 */
+		public int tableSize;
+
+		public int stations;
+
+		/**
+		 * Simulated time of the last event, in microseconds
+		 */
+		public long simulatedTime;
+
+		public long wallTimeMillis;
+
+		public long events;
+
+		/**
+		 * @return delivered frames per simulated second
+		 */
+		public double getThroughput() {
+			if (simulatedTime == 0) {
+				return 0;
+			}
+			return framesDelivered / (simulatedTime / 1000000.0);
+		}
+
+		/**
+		 * @return fraction of routed data frames that were flooded
+		 */
+		public double getFloodRatio() {
+			if (framesRouted == 0) {
+				return 0;
+			}
+			return (double) framesFlooded / framesRouted;
+		}
+
+		/**
+		 * @return fraction of the simulated time the bridge was busy
+		 */
+		public double getBridgeUtilization() {
+			if (simulatedTime == 0) {
+				return 0;
+			}
+			return (double) bridgeBusyTime / simulatedTime;
+		}
+
+		/**
+		 * @return mean time from a frame being generated to reaching its destination, in microseconds
+		 */
+		public double getMeanDeliveryTime() {
+			if (framesDelivered == 0) {
+				return 0;
+			}
+			return (double) totalDeliveryTime / framesDelivered;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder builder = new StringBuilder();
+			builder.append("Frames generated:   " + framesGenerated + "\n");
+			builder.append("Frames delivered:   " + framesDelivered + "\n");
+			builder.append("Frames acked:       " + framesAcked + "\n");
+			builder.append("Frames lost:        " + framesLost + "\n");
+			builder.append("Throughput:         " + String.format("%.1f", getThroughput()) + " frames/s\n");
+			builder.append("Mean delivery time: " + String.format("%.1f", getMeanDeliveryTime()) + " us\n");
+			builder.append("Flood ratio:        " + String.format("%.4f", getFloodRatio())
+					+ " (" + framesFlooded + " / " + framesRouted + ")\n");
+			builder.append("Copies sent:        " + copiesSent + "\n");
+			builder.append("Bridge utilization: " + String.format("%.4f", getBridgeUtilization()) + "\n");
+			if (convergenceTime < 0) {
+				builder.append("Table convergence:  not converged (" + tableSize + " / " + stations + ")\n");
+			} else {
+				builder.append("Table convergence:  " + convergenceTime + " us\n");
+			}
+			builder.append("Simulated time:     " + simulatedTime + " us\n");
+			builder.append("Wall time:          " + wallTimeMillis + " ms\n");
+			builder.append("Events:             " + events + "\n");
+			return builder.toString();
+		}
+	}
+
+	/**
+	 * A simulated ring. Holds the stations attached to it and the links to and from the bridge.
+	 */
+	private class VirtualRing implements VirtualLink {
+
+		private int id;
+
+		/**
+		 * What the bridge knows this ring as. Used as the return bridge for frames coming up from the ring.
+		 */
+		private Bridge.EmbeddedBridge embedded;
+
+		/**
+		 * Lookup of which addresses sit on this ring. Indexed by address & 0xFF
+		 */
+		private boolean[] stations;
+
+		/**
+		 * Simulated time at which the link from the bridge to this ring finishes sending its last queued frame
+		 */
+		private long downBusyUntil;
+
+		/**
+		 * Simulated time at which the link from this ring to the bridge finishes sending its last queued frame
+		 */
+		private long upBusyUntil;
+
+		public VirtualRing(int id) {
+			this.id = id;
+			this.stations = new boolean[MAX_STATIONS + 1];
+			this.downBusyUntil = 0;
+			this.upBusyUntil = 0;
+		}
+
+		/**
+		 * Frames coming down from the bridge. Only called while the bridge is processing a frame. The bridge spends
+		 * time writing the copy, then it waits its turn on the link, crosses it, and gets looked at by the ring.
+		 */
+		@Override
+		public void deliver(final byte[] frame) {
+			sendCursor += config.sendTime;
+			report.copiesSent++;
+
+			downBusyUntil = Math.max(downBusyUntil, sendCursor) + config.transmitTime;
+			if (lost()) {
+				return;
+			}
+
+			scheduler.schedule(downBusyUntil + config.linkLatency - scheduler.now(), new Runnable() {
+				@Override
+				public void run() {
+					receive(frame);
+				}
+			});
+		}
+
+		/**
+		 * Sends a frame from this ring up to the bridge.
+		 */
+		public void sendUp(final byte[] frame) {
+			upBusyUntil = Math.max(upBusyUntil, scheduler.now()) + config.transmitTime;
+			if (lost()) {
+				return;
+			}
+
+			scheduler.schedule(upBusyUntil + config.linkLatency - scheduler.now(), new Runnable() {
+				@Override
+				public void run() {
+					bridgeReceive(VirtualRing.this, frame);
+				}
+			});
+		}
+
+		private void receive(byte[] frame) {
+			byte[] header = Frame.getHeader(frame);
+			if (Frame.getFrameStatus(frame) != 0) {
+				//an ack coming back to the sender
+				if (hasStation(Frame.Header.getSource(header))) {
+					acknowledge(getId(frame));
+				}
+				return;
+			}
+
+			if (!hasStation(Frame.Header.getDestination(header))) {
+				//not for us. The embedded bridge drains it once it goes around the ring
+				return;
+			}
+
+			//station takes the frame. It goes the rest of the way around the ring with FS set to accepted,
+			//and the embedded bridge passes it back up just like the real one does
+			final byte[] accepted = frame.clone();
+			report.framesDelivered++;
+			report.totalDeliveryTime += scheduler.now() - generatedAt[getId(accepted)];
+			accepted[accepted.length - 1] = 2;
+			if (hasStation(Frame.Header.getSource(header))) {
+				//sender is on this ring too. The bridge sends no fake ACK for that, the sender sees the accepted
+				//frame come back round instead
+				acknowledge(getId(accepted));
+			}
+			scheduler.schedule(config.ringLatency, new Runnable() {
+				@Override
+				public void run() {
+					sendUp(accepted);
+				}
+			});
+		}
+
+		private boolean hasStation(byte address) {
+			return stations[address & 0xFF];
+		}
+
+		@Override
+		public String toString() {
+			return "Ring " + id;
+		}
+	}
+
+	private Config config;
+
+	private Report report;
+
+	private EventScheduler scheduler;
+
+	private Random random;
+
+	private Bridge bridge;
+
+	private VirtualRing[] rings;
+
+	/**
+	 * Which ring each address lives on. Indexed by address & 0xFF
+	 */
+	private VirtualRing[] stationRing;
+
+	/**
+	 * Addresses of all stations, in order
+	 */
+	private List<Byte> addresses;
+
+	/**
+	 * Simulated time each generated frame was created, indexed by frame id
+	 */
+	private long[] generatedAt;
+
+	/**
+	 * Whether each generated frame has been acknowledged yet, indexed by frame id
+	 */
+	private boolean[] acked;
+
+	/**
+	 * A frame waiting for the bridge, along with the ring it came from
+	 */
+	private static class Arrival {
+
+		private VirtualRing ring;
+
+		private byte[] frame;
+
+		public Arrival(VirtualRing ring, byte[] frame) {
+			this.ring = ring;
+			this.frame = frame;
+		}
+	}
+
+	/**
+	 * Frames that have reached the bridge but haven't been processed yet, in the order they arrived
+	 */
+	private Queue<Arrival> bridgeQueue;
+
+	private boolean bridgeBusy;
+
+	/**
+	 * While the bridge is processing a frame, the simulated time at which it finishes writing the last copy so far
+	 */
+	private long sendCursor;
+
+	private Runnable startNextFrame = new Runnable() {
+		@Override
+		public void run() {
+			startNext();
+		}
+	};
+
+	public static void main(String[] args) {
+		if (args.length == 0) {
+			usage();
+			return;
+		}
+
+		Simulation simulation;
+		Config config;
+		try {
+			config = parseArgs(args);
+			simulation = new Simulation(config);
+		} catch (IllegalArgumentException e) {
+			//also catches NumberFormatException from parsing
+			System.out.println("Invalid argument: " + e.getMessage());
+			usage();
+			return;
+		}
+
+		System.out.println("Simulating: " + config);
+		Report report = simulation.run();
+		System.out.print(report);
+	}
+
+	/**
+	 * Prints out the proper command-line call used to run a simulation
+	 */
+	private static void usage() {
+		System.out.println("Usage:");
+		System.out.println("java -cp bridge.jar com.smanzana.bridge.Simulation rings [stations frames interval"
+				+ " linkLatency ringLatency serviceTime sendTime transmitTime loss seed]");
+		System.out.println("All times are in simulated microseconds. Loss is a chance from 0 to 1.");
+	}
+
+	/**
+	 * Fills in a config from the command-line arguments. Values aren't checked here, that's left to the
+	 * {@link #Simulation(Config) constructor}.
+	 */
+	private static Config parseArgs(String[] args) {
+		Config config = new Config();
+		config.rings = Integer.parseInt(args[0]);
+		if (args.length > 1) config.stations = Integer.parseInt(args[1]);
+		if (args.length > 2) config.frames = Integer.parseInt(args[2]);
+		if (args.length > 3) config.frameInterval = Long.parseLong(args[3]);
+		if (args.length > 4) config.linkLatency = Long.parseLong(args[4]);
+		if (args.length > 5) config.ringLatency = Long.parseLong(args[5]);
+		if (args.length > 6) config.serviceTime = Long.parseLong(args[6]);
+		if (args.length > 7) config.sendTime = Long.parseLong(args[7]);
+		if (args.length > 8) config.transmitTime = Long.parseLong(args[8]);
+		if (args.length > 9) config.loss = Double.parseDouble(args[9]);
+		if (args.length > 10) config.seed = Long.parseLong(args[10]);
+
+		return config;
+	}
+
+	/**
+	 * Sets up the bridge, rings and stations described by the passed config.
+	 * @param config Settings for the run. Read once here and during {@link #run()}, so don't change it in between.
+	 * @throws IllegalArgumentException if any of the settings are out of range
+	 */
+	public Simulation(Config config) {
+		if (config.rings <= 0) {
+			throw new IllegalArgumentException("Invalid number of rings: " + config.rings);
+		}
+		if (config.stations < 2) {
+			throw new IllegalArgumentException("Need at least 2 stations to generate traffic: " + config.stations);
+		}
+		if (config.stations > MAX_STATIONS) {
+			throw new IllegalArgumentException("Only " + MAX_STATIONS + " station addresses exist: " + config.stations);
+		}
+		if (config.frames < 0) {
+			throw new IllegalArgumentException("Invalid number of frames: " + config.frames);
+		}
+		if (config.frameInterval < 0 || config.linkLatency < 0 || config.ringLatency < 0 || config.serviceTime < 0
+				|| config.sendTime < 0 || config.transmitTime < 0) {
+			throw new IllegalArgumentException("Times can't be negative: " + config);
+		}
+		if (!(config.loss >= 0 && config.loss <= 1)) {
+			throw new IllegalArgumentException("Loss must be between 0 and 1: " + config.loss);
+		}
+
+		this.config = config;
+		this.report = new Report();
+		this.scheduler = new EventScheduler();
+		this.random = new Random(config.seed);
+		this.bridge = new Bridge();
+		this.rings = new VirtualRing[config.rings];
+		this.stationRing = new VirtualRing[MAX_STATIONS + 1];
+		this.addresses = new ArrayList<Byte>();
+		this.generatedAt = new long[config.frames];
+		this.acked = new boolean[config.frames];
+		this.bridgeQueue = new LinkedList<Arrival>();
+		this.bridgeBusy = false;
+		this.sendCursor = 0;
+
+		for (int i = 0; i < rings.length; i++) {
+			rings[i] = new VirtualRing(i);
+			rings[i].embedded = bridge.attach(rings[i]);
+		}
+
+		//spread the stations evenly over the rings. Address 0 is the bridge, so start at 1
+		int stations = config.stations;
+		for (int i = 0; i < stations; i++) {
+			VirtualRing ring = rings[(int) ((long) i * rings.length / stations)];
+			int address = i + 1;
+			ring.stations[address] = true;
+			stationRing[address] = ring;
+			addresses.add((byte) address);
+		}
+		report.stations = stations;
+	}
+
+	/**
+	 * Generates all traffic and runs the simulation until no events are left.
+	 * @return the results of the run
+	 */
+	public Report run() {
+		long start = System.currentTimeMillis();
+
+		//kept as a double so the fractions of a microsecond add up instead of being rounded off every frame
+		double time = 0;
+		for (int i = 0; i < config.frames; i++) {
+			time += nextInterval();
+			final int id = i;
+			scheduler.schedule(Math.round(time), new Runnable() {
+				@Override
+				public void run() {
+					generate(id);
+				}
+			});
+		}
+
+		scheduler.run();
+
+		report.simulatedTime = scheduler.now();
+		report.wallTimeMillis = System.currentTimeMillis() - start;
+		report.events = scheduler.getFiredCount();
+		report.tableSize = bridge.tableSize();
+		report.framesLost = report.framesGenerated - report.framesDelivered;
+		return report;
+	}
+
+	/**
+	 * @return exponentially distributed time until the next generated frame, so arrivals are a Poisson process
+	 */
+	private double nextInterval() {
+		return (-Math.log(1.0 - random.nextDouble()) * config.frameInterval);
+	}
+
+	/**
+	 * Picks a random source and destination and sends a new frame around the source's ring to the embedded bridge.
+	 */
+	private void generate(int id) {
+		int src = random.nextInt(addresses.size());
+		int dest = random.nextInt(addresses.size() - 1);
+		if (dest >= src) {
+			dest++; //never send to ourselves
+		}
+
+		final byte[] frame = assembleFrame(addresses.get(src), addresses.get(dest), id);
+		final VirtualRing ring = stationRing[addresses.get(src) & 0xFF];
+		generatedAt[id] = scheduler.now();
+		report.framesGenerated++;
+
+		scheduler.schedule(config.ringLatency, new Runnable() {
+			@Override
+			public void run() {
+				ring.sendUp(frame);
+			}
+		});
+	}
+
+	/**
+	 * A frame has arrived at the bridge. The bridge only works on one frame at a time, so it's queued up behind
+	 * whatever the bridge is already busy with.
+	 */
+	private void bridgeReceive(VirtualRing ring, byte[] frame) {
+		bridgeQueue.add(new Arrival(ring, frame));
+		if (!bridgeBusy) {
+			startNext();
+		}
+	}
+
+	/**
+	 * Starts work on the next queued frame, if there is one. The frame is routed once the service time is up.
+	 */
+	private void startNext() {
+		final Arrival arrival = bridgeQueue.poll();
+		if (arrival == null) {
+			bridgeBusy = false;
+			return;
+		}
+
+		bridgeBusy = true;
+		report.bridgeBusyTime += config.serviceTime;
+		scheduler.schedule(config.serviceTime, new Runnable() {
+			@Override
+			public void run() {
+				process(arrival.ring, arrival.frame);
+			}
+		});
+	}
+
+	/**
+	 * Routes a frame through the bridge. Every copy the bridge sends pushes back when it can start on the next
+	 * frame, so floods cost time in proportion to the number of rings.
+	 */
+	private void process(VirtualRing ring, byte[] frame) {
+		sendCursor = scheduler.now();
+
+		if (Frame.getFrameStatus(frame) == 0) {
+			report.framesRouted++;
+			if (!bridge.knows(Frame.Header.getDestination(Frame.getHeader(frame)))) {
+				report.framesFlooded++;
+			}
+		}
+
+		try {
+			bridge.processFrame(ring.embedded, frame);
+		} catch (IOException e) {
+			//virtual links never throw, but processFrame is declared to
+			e.printStackTrace();
+			System.out.println("Encountered an IO Exception when processing a simulated frame!");
+		}
+
+		if (report.convergenceTime < 0 && bridge.tableSize() >= report.stations) {
+			report.convergenceTime = scheduler.now();
+		}
+
+		report.bridgeBusyTime += sendCursor - scheduler.now();
+		scheduler.schedule(sendCursor - scheduler.now(), startNextFrame);
+	}
+
+	/**
+	 * Counts a frame as acknowledged, unless its sender already saw an ack for it. A flooded frame within one ring
+	 * gets both a fake ACK from the bridge and the accepted frame back.
+	 */
+	private void acknowledge(int id) {
+		if (!acked[id]) {
+			acked[id] = true;
+			report.framesAcked++;
+		}
+	}
+
+	/**
+	 * Creates a data frame using the same layout as the bridge's own frames.
+	 * @param id Number used to find when the frame was generated. Stored in the first 4 bytes of the data.
+	 */
+	private static byte[] assembleFrame(byte source, byte destination, int id) {
+		byte[] frame = new byte[Frame.headerLength + PAYLOAD_SIZE + 1];
+		frame[0] = AC_FRAME; //T set so processFrame doesn't treat it as a token and echo it back
+		frame[1] = 0; //FC
+		frame[2] = destination;
+		frame[3] = source;
+		frame[4] = PAYLOAD_SIZE;
+		frame[Frame.headerLength] = (byte) (id >>> 24);
+		frame[Frame.headerLength + 1] = (byte) (id >>> 16);
+		frame[Frame.headerLength + 2] = (byte) (id >>> 8);
+		frame[Frame.headerLength + 3] = (byte) id;
+		frame[frame.length - 1] = 0; //FS
+
+		return frame;
+	}
+
+	private static int getId(byte[] frame) {
+		int data = Frame.headerLength;
+		return ((frame[data] & 0xFF) << 24) | ((frame[data + 1] & 0xFF) << 16) | ((frame[data + 2] & 0xFF) << 8)
+				| (frame[data + 3] & 0xFF);
+	}
+
+	/**
+	 * Rolls for a frame getting lost on a link.
+	 */
+	private boolean lost() {
+		return config.loss > 0 && random.nextDouble() < config.loss;
+	}
+}
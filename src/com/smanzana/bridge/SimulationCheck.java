@@ -0,0 +1,147 @@
+package com.smanzana.bridge;
+
+/**
+ * Self-test for {@link Simulation}. Runs a few small topologies and checks that results are reproducible and
+ * that the report's numbers are consistent with each other.<br />
+ * Prints each failed check and exits with status 1 if any failed.
+ * <p><b>[Dependencies: Project3]</b></p>
+ */
+public class SimulationCheck {
+
+	private static int failures = 0;
+
+	public static void main(String[] args) {
+		checkReproducible();
+		checkLossless();
+		checkLossy();
+		checkFirstFrameFloods();
+		checkValidation();
+
+		if (failures > 0) {
+			System.out.println(failures + " check(s) failed!");
+			System.exit(1);
+		}
+		System.out.println("All simulation checks passed");
+	}
+
+	/**
+	 * Two runs with the same seed must give the same report, apart from wall time.
+	 */
+	private static void checkReproducible() {
+		Simulation.Config config = smallConfig();
+		config.loss = 0.05;
+		config.seed = 7;
+
+		String first = describe(new Simulation(config).run());
+		String second = describe(new Simulation(config).run());
+		check(first.equals(second), "same seed gave different reports:\n" + first + "\n" + second);
+	}
+
+	/**
+	 * With no loss, every frame gets delivered and acked.
+	 */
+	private static void checkLossless() {
+		Simulation.Config config = smallConfig();
+		Simulation.Report report = new Simulation(config).run();
+
+		checkTotals(report);
+		check(report.framesGenerated == config.frames, "generated " + report.framesGenerated + " of " + config.frames);
+		check(report.framesDelivered == report.framesGenerated,
+				"lossless run delivered " + report.framesDelivered + " of " + report.framesGenerated);
+		check(report.framesAcked == report.framesGenerated,
+				"lossless run acked " + report.framesAcked + " of " + report.framesGenerated);
+		check(report.framesLost == 0, "lossless run lost " + report.framesLost);
+	}
+
+	private static void checkLossy() {
+		Simulation.Config config = smallConfig();
+		config.loss = 0.1;
+		Simulation.Report report = new Simulation(config).run();
+
+		checkTotals(report);
+		check(report.framesLost > 0, "10% loss run lost nothing");
+	}
+
+	/**
+	 * The table starts empty, so the only frame of a run has to be flooded.
+	 */
+	private static void checkFirstFrameFloods() {
+		Simulation.Config config = smallConfig();
+		config.frames = 1;
+		Simulation.Report report = new Simulation(config).run();
+
+		checkTotals(report);
+		check(report.framesRouted == 1, "single frame run routed " + report.framesRouted);
+		check(report.getFloodRatio() == 1.0, "flood ratio with an empty table was " + report.getFloodRatio());
+		check(report.copiesSent >= config.rings, "flood sent " + report.copiesSent + " copies to " + config.rings
+				+ " rings");
+	}
+
+	private static void checkValidation() {
+		Simulation.Config config = smallConfig();
+		config.stations = Simulation.MAX_STATIONS + 1;
+		checkRejected(config, "too many stations");
+
+		config = smallConfig();
+		config.frames = -1;
+		checkRejected(config, "negative frames");
+
+		config = smallConfig();
+		config.loss = 1.5;
+		checkRejected(config, "loss above 1");
+
+		config = smallConfig();
+		config.sendTime = -1;
+		checkRejected(config, "negative send time");
+	}
+
+	/**
+	 * Invariants that hold for every run.
+	 */
+	private static void checkTotals(Simulation.Report report) {
+		check(report.framesDelivered + report.framesLost == report.framesGenerated,
+				"delivered " + report.framesDelivered + " + lost " + report.framesLost + " != generated "
+				+ report.framesGenerated);
+		check(report.copiesSent >= report.framesRouted,
+				"sent " + report.copiesSent + " copies for " + report.framesRouted + " routed frames");
+		check(report.framesAcked <= report.framesGenerated,
+				"acked " + report.framesAcked + " of " + report.framesGenerated);
+	}
+
+	private static void checkRejected(Simulation.Config config, String what) {
+		try {
+			new Simulation(config);
+		} catch (IllegalArgumentException e) {
+			return;
+		}
+		check(false, "config with " + what + " was accepted");
+	}
+
+	private static Simulation.Config smallConfig() {
+		Simulation.Config config = new Simulation.Config();
+		config.rings = 8;
+		config.stations = 20;
+		config.frames = 2000;
+		return config;
+	}
+
+	/**
+	 * @return the report as text without the wall time, which changes from run to run
+	 */
+	private static String describe(Simulation.Report report) {
+		StringBuilder builder = new StringBuilder();
+		for (String line : report.toString().split("\n")) {
+			if (!line.startsWith("Wall time:")) {
+				builder.append(line).append("\n");
+			}
+		}
+		return builder.toString();
+	}
+
+	private static void check(boolean passed, String message) {
+		if (!passed) {
+			failures++;
+			System.out.println("FAILED: " + message);
+		}
+	}
+}
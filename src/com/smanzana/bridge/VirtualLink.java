@@ -0,0 +1,17 @@
+package com.smanzana.bridge;
+
+/**
+ * A simulated connection between the bridge and a ring.<br />
+ * Takes the place of the output socket of an {@link Bridge.EmbeddedBridge EmbeddedBridge} when running
+ * in {@link Simulation simulation} mode.
+ */
+interface VirtualLink {
+	
+	/**
+	 * Hands a frame to the link. The link is responsible for any latency or loss.<br />
+	 * The same array may be passed to several links when flooding, so it must not be modified.
+	 * @param frame The complete frame
+	 */
+	public void deliver(byte[] frame);
+	
+}